@@ -0,0 +1,398 @@
+/*
+ */
+package webber;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javafx.animation.AnimationTimer;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.event.EventTarget;
+import javafx.event.EventType;
+import javafx.scene.web.WebEngine;
+import netscape.javascript.JSException;
+import netscape.javascript.JSObject;
+
+/**
+ * WebBridge exchanges messages between the application and the page loaded
+ * in a {@link webber.WebClient WebClient} without making HTTP requests.
+ * Once a page has loaded, a 'webber' object is injected into the page
+ * (see bridge.js).  Messages in each direction are queued and then batched
+ * into a single payload which crosses the bridge at most once per animation
+ * frame, so that sending many small messages costs a single call between
+ * Java and JavaScript.  Large arrays of bytes are sent with the bulk methods.
+ * <p>
+ * The number of pending messages in each direction is limited, when this
+ * limit is reached further messages are refused, allowing the sender to
+ * back off until the receiver has caught up.
+ * <p>
+ * The bridge is only installed in pages with the same origin as the web
+ * application, and the page is only given a {@link WebBridge.Page Page}
+ * object through which it can deliver messages.  Messages are refused while
+ * no page is installed, and pending messages are discarded when the page is
+ * navigated away, so they are never delivered to a different page.
+ * A 'ready' event is published when the bridge has been installed, and
+ * the page receives a 'webberready' event on its window.
+ *
+ * @author maxwelld
+ */
+public class WebBridge {
+
+    private static final String WEB_BRIDGE_SCRIPT_URL = "webber/bridge.js";
+
+    private static final String WEB_BRIDGE_MEMBER = "webberBridge";
+
+    private static final int WEB_BRIDGE_MAX_PAYLOAD_LENGTH = 1 << 20;
+
+    private static final char WEB_BRIDGE_MESSAGE_TYPE = 'm';
+
+    private static final char WEB_BRIDGE_BULK_TYPE = 'b';
+
+    private static final Logger logger = Logger.getLogger(WebBridge.class.getName());
+
+    private static String script;
+
+    private static synchronized String getScript() throws IOException {
+        if(script == null) {
+            InputStream input = WebBridge.class.getClassLoader().getResourceAsStream(WEB_BRIDGE_SCRIPT_URL);
+            if(input == null) {
+                throw new IOException("Resource not found: " + WEB_BRIDGE_SCRIPT_URL);
+            }
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int count;
+                while((count = input.read(buffer)) >= 0) {
+                    output.write(buffer, 0, count);
+                }
+                script = new String(output.toByteArray(), Charset.forName("UTF-8"));
+            } finally {
+                input.close();
+            }
+        }
+        return script;
+    }
+
+    private static String frame(char type, String channel, String data) {
+        StringBuilder builder = new StringBuilder(channel.length() + data.length() + 16);
+        builder.append(type);
+        builder.append(channel.length()).append(':').append(channel);
+        builder.append(data.length()).append(':').append(data);
+        return builder.toString();
+    }
+
+
+    private final EventTarget target;
+
+    private final WebEngine engine;
+
+    private final int maxPending;
+
+    private final Queue<String> outbound = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger outboundCount = new AtomicInteger();
+
+    private volatile JSObject page;
+
+    private Page pageBridge;
+
+    private URI origin;
+
+    private EventHandler<WebBridgeEvent<String>> onMessage;
+
+    private EventHandler<WebBridgeEvent<byte[]>> onBulk;
+
+    private EventHandler<WebBridgeEvent<String>> onReady;
+
+    private final AnimationTimer flushTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+
+    WebBridge(EventTarget target, WebEngine engine, int maxPending) {
+        this.target = target;
+        this.engine = engine;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Inject the bridge into the page that has been loaded, if it has the
+     * same origin as the web application, must be called in Application
+     * thread.
+     */
+    void install() {
+        String location = engine.getLocation();
+        if(!isSameOrigin(location)) {
+            logger.log(Level.WARNING, "Web bridge not installed in page with different origin: {0}", location);
+            return;
+        }
+        try {
+            pageBridge = new Page();
+            JSObject window = (JSObject) engine.executeScript("window");
+            window.setMember(WEB_BRIDGE_MEMBER, pageBridge);
+            engine.executeScript(getScript());
+            synchronized(outbound) {
+                page = (JSObject) engine.executeScript("window.webber");
+            }
+            flushTimer.start();
+            logger.log(Level.FINE, "Web bridge installed in page: {0}", location);
+        } catch(IOException | JSException e) {
+            logger.log(Level.WARNING, "Web bridge could not be installed", e);
+            page = null;
+            return;
+        }
+        fireWebBridgeEvent(getOnReady(), WebBridgeEvent.READY, null, location);
+    }
+
+    /**
+     * Detach the bridge from the current page and discard any messages
+     * pending for it, must be called in Application thread.
+     */
+    void uninstall() {
+        flushTimer.stop();
+        if(pageBridge != null) {
+            pageBridge.detached = true;
+            pageBridge = null;
+        }
+        synchronized(outbound) {
+            page = null;
+            outbound.clear();
+            outboundCount.set(0);
+        }
+    }
+
+    /**
+     * Set the URL of the web application, the bridge is only installed
+     * in pages with the same scheme, host and port.
+     *
+     * @param url
+     */
+    void setOrigin(String url) {
+        try {
+            origin = new URI(url);
+        } catch(URISyntaxException e) {
+            logger.log(Level.WARNING, "Web bridge origin invalid: {0}", url);
+            origin = null;
+        }
+    }
+
+    private boolean isSameOrigin(String location) {
+        if(origin == null || location == null) {
+            return false;
+        }
+        URI uri;
+        try {
+            uri = new URI(location);
+        } catch(URISyntaxException e) {
+            return false;
+        }
+        return origin.getScheme() != null && origin.getScheme().equalsIgnoreCase(uri.getScheme())
+                && origin.getHost() != null && origin.getHost().equalsIgnoreCase(uri.getHost())
+                && getPort(origin) == getPort(uri);
+    }
+
+    private static int getPort(URI uri) {
+        if(uri.getPort() >= 0) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    /**
+     * Queue a message to be sent to the page, may be called from any thread.
+     *
+     * @param channel
+     * @param message
+     * @return false if the message was refused because no page is installed
+     * or too many messages are pending
+     */
+    public boolean send(String channel, String message) {
+        return queue(frame(WEB_BRIDGE_MESSAGE_TYPE, channel, message));
+    }
+
+    /**
+     * Queue an array of bytes to be sent to the page, where it is received
+     * as a Uint8Array, may be called from any thread.
+     *
+     * @param channel
+     * @param data
+     * @return false if the data was refused because no page is installed
+     * or too many messages are pending
+     */
+    public boolean sendBulk(String channel, byte[] data) {
+        return queue(frame(WEB_BRIDGE_BULK_TYPE, channel, Base64.getEncoder().encodeToString(data)));
+    }
+
+    /**
+     * @return true if a message can be sent without being refused
+     */
+    public boolean isWritable() {
+        return page != null && outboundCount.get() < maxPending;
+    }
+
+    /**
+     * Publish a 'message' or 'bulk' event for each framed message in the
+     * batch received from the page.
+     *
+     * @param payload
+     */
+    private void receive(String payload) {
+        int pos = 0;
+        while(pos < payload.length()) {
+            char type;
+            String channel;
+            String data;
+            byte[] bytes = null;
+            try {
+                type = payload.charAt(pos);
+                int sep = payload.indexOf(':', pos + 1);
+                int length = Integer.parseInt(payload.substring(pos + 1, sep));
+                channel = payload.substring(sep + 1, sep + 1 + length);
+                pos = sep + 1 + length;
+                sep = payload.indexOf(':', pos);
+                length = Integer.parseInt(payload.substring(pos, sep));
+                data = payload.substring(sep + 1, sep + 1 + length);
+                pos = sep + 1 + length;
+                if(type == WEB_BRIDGE_BULK_TYPE) {
+                    bytes = Base64.getDecoder().decode(data);
+                }
+            } catch(IllegalArgumentException | IndexOutOfBoundsException e) {
+                logger.log(Level.WARNING, "Web bridge payload invalid at position: {0}", pos);
+                return;
+            }
+
+            if(bytes != null) {
+                fireWebBridgeEvent(getOnBulk(), WebBridgeEvent.BULK, channel, bytes);
+            } else {
+                fireWebBridgeEvent(getOnMessage(), WebBridgeEvent.MESSAGE, channel, data);
+            }
+        }
+    }
+
+    private synchronized EventHandler<WebBridgeEvent<String>> getOnMessage() {
+        return onMessage;
+    }
+
+    public synchronized void setOnMessage(EventHandler<WebBridgeEvent<String>> onMessage) {
+        this.onMessage = onMessage;
+    }
+
+    private synchronized EventHandler<WebBridgeEvent<byte[]>> getOnBulk() {
+        return onBulk;
+    }
+
+    public synchronized void setOnBulk(EventHandler<WebBridgeEvent<byte[]>> onBulk) {
+        this.onBulk = onBulk;
+    }
+
+    private synchronized EventHandler<WebBridgeEvent<String>> getOnReady() {
+        return onReady;
+    }
+
+    /**
+     * Set the handler called, with the location of the page, once the
+     * bridge has been installed and messages can be sent.
+     *
+     * @param onReady
+     */
+    public synchronized void setOnReady(EventHandler<WebBridgeEvent<String>> onReady) {
+        this.onReady = onReady;
+    }
+
+    private boolean queue(String framed) {
+        synchronized(outbound) {
+            if(page == null || outboundCount.get() >= maxPending) {
+                return false;
+            }
+            outboundCount.incrementAndGet();
+            outbound.offer(framed);
+            return true;
+        }
+    }
+
+    /**
+     * Deliver pending messages to the page in a single payload. The payload
+     * is limited in length, so that the remainder is delivered with the next
+     * animation frame, but always includes at least one message.
+     */
+    private void flush() {
+        JSObject current = page;
+        if(current == null || outbound.isEmpty()) {
+            return;
+        }
+
+        StringBuilder payload = new StringBuilder();
+        String framed;
+        while((framed = outbound.peek()) != null) {
+            if(payload.length() > 0 && payload.length() + framed.length() > WEB_BRIDGE_MAX_PAYLOAD_LENGTH) {
+                break;
+            }
+            payload.append(outbound.poll());
+            outboundCount.decrementAndGet();
+        }
+
+        try {
+            current.call("_deliver", payload.toString());
+        } catch(JSException e) {
+            logger.log(Level.WARNING, "Web bridge payload could not be delivered", e);
+        }
+    }
+
+    private <T> void fireWebBridgeEvent(EventHandler<WebBridgeEvent<T>> handler, EventType<WebBridgeEvent<T>> eventType, String channel, T data) {
+        WebBridgeEvent<T> event = new WebBridgeEvent<>(eventType, channel, data);
+        if(handler != null) {
+            handler.handle(event);
+        }
+        Event.fireEvent(target, event);
+    }
+
+    /**
+     * Page is the only object given to the page, and so limits what the
+     * page can call to delivering messages.  It must be public for its
+     * methods to be called from JavaScript.
+     */
+    public final class Page {
+
+        private volatile boolean detached = false;
+
+        private Page() {
+        }
+
+        /**
+         * Called by the page to find the limit of pending messages.
+         *
+         * @return the maximum number of pending messages
+         */
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        /**
+         * Called by the page, once per animation frame, with a batch of
+         * framed messages.
+         *
+         * @param payload
+         */
+        public void receive(String payload) {
+            if(detached) {
+                logger.log(Level.FINE, "Web bridge payload from detached page ignored");
+                return;
+            }
+            WebBridge.this.receive(payload);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ */
+package webber;
+
+import javafx.event.Event;
+import javafx.event.EventType;
+
+/**
+ * WebBridgeEvent is used by a {@link webber.WebBridge WebBridge} to
+ * publish messages received from the page within the JavaFX application.
+ * 
+ * @author maxwelld
+ */
+public class WebBridgeEvent<T> extends Event {
+    
+    public static final EventType<WebBridgeEvent> ANY = new EventType<>(Event.ANY, "WEB_BRIDGE");
+    
+    public static final EventType<WebBridgeEvent<String>> READY = new EventType<>(ANY, "READY");
+    
+    public static final EventType<WebBridgeEvent<String>> MESSAGE = new EventType<>(ANY, "MESSAGE");
+    
+    public static final EventType<WebBridgeEvent<byte[]>> BULK = new EventType<>(ANY, "BULK");
+    
+    final private String channel;
+    
+    final private T data;
+
+    
+    WebBridgeEvent(EventType<WebBridgeEvent<T>> eventType, String channel, T data) {
+        super(eventType);
+        this.channel = channel;
+        this.data = data;
+    }
+    
+    public String getChannel() {
+        return channel;
+    }
+
+    public T getData() {
+        return data;
+    }
+}
@@ -2,13 +2,20 @@
  */
 package webber;
 
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Worker;
+import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.web.WebView;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 
 /**
  * WebClient implements general purpose "browser" with limited features
  * based upon the JavaFX {@link javafx.scene.web.WebView WebView}.
+ * Optionally, a {@link webber.WebBridge WebBridge} is injected into each
+ * page that is loaded.
  * 
  * @author maxwelld
  */
@@ -18,11 +25,19 @@ public class WebClient extends Stage {
     
     private static final String WEB_CLIENT_HEIGHT_PARAM = "height";
     
+    private static final String WEB_CLIENT_BRIDGE_PARAM = "bridge";
+    
+    private static final String WEB_CLIENT_BRIDGE_MAX_PENDING_PARAM = "bridgeMaxPending";
+    
     private static final double WEB_CLIENT_DEFAULT_WIDTH = 800;
             
     private static final double WEB_CLIENT_DEFAULT_HEIGHT = 800;
     
+    private static final double WEB_CLIENT_DEFAULT_BRIDGE_MAX_PENDING = 10000;
+    
     private WebView webView;
+    
+    private WebBridge webBridge;
 
 
     public WebClient(Webber.Parameters parameters) {
@@ -30,9 +45,42 @@ public class WebClient extends Stage {
         double width = parameters.getNamed(WEB_CLIENT_WIDTH_PARAM, WEB_CLIENT_DEFAULT_WIDTH);    
         double height = parameters.getNamed(WEB_CLIENT_HEIGHT_PARAM, WEB_CLIENT_DEFAULT_HEIGHT);
         setScene(new Scene(webView, width, height));
+        
+        if(Boolean.parseBoolean(parameters.getNamed(WEB_CLIENT_BRIDGE_PARAM, "false"))) {
+            int maxPending = (int) parameters.getNamed(WEB_CLIENT_BRIDGE_MAX_PENDING_PARAM, WEB_CLIENT_DEFAULT_BRIDGE_MAX_PENDING);
+            webBridge = new WebBridge(this, webView.getEngine(), maxPending);
+            
+            webView.getEngine().getLoadWorker().stateProperty().addListener(new ChangeListener<Worker.State>() {
+                @Override
+                public void changed(ObservableValue<? extends Worker.State> observable, Worker.State oldState, Worker.State newState) {
+                    if(newState == Worker.State.SUCCEEDED) {
+                        webBridge.install();
+                    } else if(newState == Worker.State.SCHEDULED) {
+                        webBridge.uninstall();
+                    }
+                }
+            });
+            
+            addEventHandler(WindowEvent.WINDOW_HIDDEN, new EventHandler<WindowEvent>() {
+                @Override
+                public void handle(WindowEvent event) {
+                    webBridge.uninstall();
+                }
+            });
+        }
     }
     
     public void load(String url) {
+        if(webBridge != null) {
+            webBridge.setOrigin(url);
+        }
         webView.getEngine().load(url);
     }
+    
+    /**
+     * @return the bridge to the loaded page, or null if not enabled
+     */
+    public WebBridge getBridge() {
+        return webBridge;
+    }
 }
@@ -3,16 +3,30 @@
 package webber;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
       
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,15 +35,36 @@ import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.event.EventType;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.ToolBar;
+import javafx.scene.layout.BorderPane;
 import javafx.application.Platform;
 
 import java.util.Queue;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
 
 
 /**
@@ -51,6 +86,64 @@ public class WebServer extends Stage {
     
     private static final String WEB_SERVER_PORT_REGEX = "\\[\"http\\-bio\\-.*auto\\-\\d\\-(\\d+)\"\\]";
     
+    private static final Pattern WEB_SERVER_PORT_PATTERN = Pattern.compile(WEB_SERVER_PORT_REGEX);
+    
+    private static final long WEB_SERVER_OUTPUT_POLL_INTERVAL = 20;
+    
+    private static final int WEB_SERVER_OUTPUT_BUFFER_SIZE = 8192;
+    
+    private static final int WEB_SERVER_OUTPUT_DISPATCH_BATCH_SIZE = 500;
+    
+    private static final int WEB_SERVER_OUTPUT_ERROR_READS_PER_POLL = 4;
+    
+    private static final String WEB_SERVER_HEALTH_PATH_PARAM = "healthPath";
+    
+    private static final String WEB_SERVER_HEALTH_INTERVAL_PARAM = "healthInterval";
+    
+    private static final String WEB_SERVER_HEALTH_TIMEOUT_PARAM = "healthTimeout";
+    
+    private static final String WEB_SERVER_HEALTH_DEGRADED_LATENCY_PARAM = "healthDegradedLatency";
+    
+    private static final String WEB_SERVER_HEALTH_DEFAULT_PATH = "/";
+    
+    private static final double WEB_SERVER_HEALTH_DEFAULT_INTERVAL = 5000;
+    
+    private static final double WEB_SERVER_HEALTH_DEFAULT_TIMEOUT = 2000;
+    
+    private static final double WEB_SERVER_HEALTH_DEFAULT_DEGRADED_LATENCY = 1000;
+    
+    private static final int WEB_SERVER_HEALTH_UNRESPONSIVE_FAILURES = 3;
+    
+    private static final int WEB_SERVER_HEALTH_LATENCY_WINDOW = 100;
+    
+    private static final int WEB_SERVER_HEALTH_RESPONSE_BUFFER_SIZE = 1024;
+    
+    private static final Pattern WEB_SERVER_HEALTH_STATUS_PATTERN = Pattern.compile("^HTTP/\\d\\.\\d (\\d{3})");
+    
+    private static final String WEB_SERVER_RECORDING_PARAM = "recording";
+    
+    private static final String WEB_SERVER_RECORDING_CONTINUOUS = "continuous";
+    
+    private static final String WEB_SERVER_RECORDING_CONTINUOUS_NAME = "webber-continuous";
+    
+    private static final String WEB_SERVER_RECORDING_CONTINUOUS_START_OPT = "-XX:StartFlightRecording=name=%s,settings=default,disk=true,maxage=30m,dumponexit=true,filename=%s";
+    
+    private static final String WEB_SERVER_RECORDING_CONTINUOUS_REPOSITORY_OPT = "-XX:FlightRecorderOptions=repository=%s";
+    
+    private static final String WEB_SERVER_ERROR_FILE_OPT = "-XX:ErrorFile=%s";
+    
+    private static final String WEB_SERVER_ERROR_FILE_NAME = "hs_err_pid%p.log";
+    
+    private static final String WEB_SERVER_RECORDING_PROFILE_NAME = "webber-profile";
+    
+    private static final Integer[] WEB_SERVER_PROFILE_DURATIONS = { 30, 60, 120, 300 };
+    
+    private static final int WEB_SERVER_PROFILE_SUMMARY_SIZE = 10;
+    
+    private static final Pattern WEB_SERVER_JCMD_ERROR_PATTERN = Pattern.compile("Unknown argument|Could not|Exception|Error|failed", Pattern.CASE_INSENSITIVE);
+    
+    private static final String WEB_SERVER_MBEAN_NAME = "webber:type=WebServer";
+    
     private static final Logger logger = Logger.getLogger(WebServer.class.getName());
     
     private static File createTempDirectory(File parent, String name) throws IOException {
@@ -59,6 +152,14 @@ public class WebServer extends Stage {
         return tempPath.toFile();
     }
     
+    /**
+     * Quote an option for use in CATALINA_OPTS, which catalina.sh
+     * evaluates, so that it remains a single argument.
+     */
+    private static String quoteCatalinaOpt(String opt) {
+        return "\"" + opt.replaceAll("([\"\\\\$`])", "\\\\$1") + "\"";
+    }
+    
     private static boolean deleteTempDirectory(File directory) {
         if(directory.isDirectory()) {
             for(File f : directory.listFiles()) {
@@ -75,6 +176,20 @@ public class WebServer extends Stage {
     
     private WebServerExecuterThread wsExecuterThread;
     
+    private WebServerHealthProberThread wsHealthProberThread;
+    
+    private boolean healthProberStopped = false;
+    
+    private volatile WebServerHealth health;
+    
+    private String healthPath;
+    
+    private long healthInterval;
+    
+    private long healthTimeout;
+    
+    private double healthDegradedLatency;
+    
     private EventHandler<WebServerEvent> onStarting;
     
     private EventHandler<WebServerEvent<Integer>> onStarted;
@@ -83,24 +198,148 @@ public class WebServer extends Stage {
     
     private EventHandler<WebServerEvent<String>> onError;
     
+    private EventHandler<WebServerEvent<String>> onErrorMessage;
+    
     private EventHandler<WebServerEvent> onStopping;
     
     private EventHandler<WebServerEvent> onStopped;
     
+    private EventHandler<WebServerEvent<WebServerHealth>> onHealthChanged;
+    
+    private final Queue<WebServerEvent<String>> pendingErrorMessages = new ConcurrentLinkedQueue<>();
+    
+    private final Queue<WebServerEvent<String>> pendingMessages = new ConcurrentLinkedQueue<>();
+    
+    private final AtomicInteger pendingErrorMessageCount = new AtomicInteger();
+    
+    private final AtomicInteger pendingMessageCount = new AtomicInteger();
+    
+    private final AtomicBoolean outputDispatchScheduled = new AtomicBoolean();
+    
+    private final LongAdder linesRead = new LongAdder();
+    
+    private final LongAdder bytesRead = new LongAdder();
+    
+    private final LongAdder eventsDispatched = new LongAdder();
+    
+    private final LongAdder eventsDropped = new LongAdder();
+    
+    private final LongAdder pendingRunLater = new LongAdder();
+    
+    private final LongAdder processStarts = new LongAdder();
+    
+    private volatile String state = WebServerEvent.STOPPED.getName();
+    
+    private volatile int port = 0;
+    
+    private volatile long startedTime = 0;
+    
+    private ObjectName mbeanName;
+    
+    private boolean continuousRecording;
+    
+    private volatile long processId = 0;
+    
+    private volatile String processJavaHome;
+    
+    private Button profileButton;
+    
+    private Button dumpButton;
+    
+    private ChoiceBox<Integer> profileDuration;
+    
+    private boolean profileRunning = false;
+    
+    private boolean dumpRunning = false;
+    
+    private boolean profilingAvailable = false;
+    
     
     public WebServer(Webber.Parameters parameters) {
         wsExecuterThread = new WebServerExecuterThread();
         
+        healthPath = parameters.getNamed(WEB_SERVER_HEALTH_PATH_PARAM, WEB_SERVER_HEALTH_DEFAULT_PATH);
+        healthInterval = (long) parameters.getNamed(WEB_SERVER_HEALTH_INTERVAL_PARAM, WEB_SERVER_HEALTH_DEFAULT_INTERVAL);
+        healthTimeout = (long) parameters.getNamed(WEB_SERVER_HEALTH_TIMEOUT_PARAM, WEB_SERVER_HEALTH_DEFAULT_TIMEOUT);
+        if(healthTimeout <= 0) {
+            logger.log(Level.WARNING, "Web server health timeout must be positive, using default: {0}", healthTimeout);
+            healthTimeout = (long) WEB_SERVER_HEALTH_DEFAULT_TIMEOUT;
+        }
+        healthDegradedLatency = parameters.getNamed(WEB_SERVER_HEALTH_DEGRADED_LATENCY_PARAM, WEB_SERVER_HEALTH_DEFAULT_DEGRADED_LATENCY);
+        
         wsConsole = new WebServerConsole(WEB_SERVER_CONSOLE_MAX_LINES);
         
-        addEventHandler(WebServerEvent.MESSAGE, new EventHandler<WebServerEvent<String>>() {
+        EventHandler<WebServerEvent<String>> onConsoleMessage = new EventHandler<WebServerEvent<String>>() {
             @Override
             public void handle(WebServerEvent<String> event) {
                 wsConsole.appendText(event.getData());
             }
+        };
+        
+        addEventHandler(WebServerEvent.MESSAGE, onConsoleMessage);
+        addEventHandler(WebServerEvent.ERROR_MESSAGE, onConsoleMessage);
+        
+        continuousRecording = WEB_SERVER_RECORDING_CONTINUOUS.equals(parameters.getNamed(WEB_SERVER_RECORDING_PARAM, null));
+        
+        profileDuration = new ChoiceBox<>(FXCollections.observableArrayList(WEB_SERVER_PROFILE_DURATIONS));
+        profileDuration.getSelectionModel().select(1);
+        
+        profileButton = new Button("Profile");
+        profileButton.setDisable(true);
+        profileButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                profileButton.setDisable(true);
+                profileRunning = true;
+                new WebServerProfilerThread(profileDuration.getValue()).start();
+            }
+        });
+        
+        dumpButton = new Button("Dump Recording");
+        dumpButton.setDisable(true);
+        dumpButton.setVisible(continuousRecording);
+        dumpButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                dumpButton.setDisable(true);
+                dumpRunning = true;
+                new WebServerProfilerThread(0).start();
+            }
         });
         
-        setScene(new Scene(wsConsole, WEB_SERVER_CONSOLE_HEIGHT, WEB_SERVER_CONSOLE_WIDTH));
+        addEventHandler(WebServerEvent.STARTED, new EventHandler<WebServerEvent<Integer>>() {
+            @Override
+            public void handle(WebServerEvent<Integer> event) {
+                profilingAvailable = isProfilingAvailable();
+                if(!profilingAvailable) {
+                    wsConsole.appendText("Webber: Profiling unavailable, it requires a JDK 11 or later with jcmd and the jdk.jfr module");
+                }
+                profileButton.setDisable(profileRunning || !profilingAvailable);
+                dumpButton.setDisable(dumpRunning || !profilingAvailable);
+            }
+        });
+        
+        addEventHandler(WebServerEvent.STOPPING, new EventHandler<WebServerEvent>() {
+            @Override
+            public void handle(WebServerEvent event) {
+                profileButton.setDisable(true);
+                dumpButton.setDisable(true);
+            }
+        });
+        
+        BorderPane wsConsolePane = new BorderPane();
+        wsConsolePane.setTop(new ToolBar(new Label("Duration (s):"), profileDuration, profileButton, dumpButton));
+        wsConsolePane.setCenter(wsConsole);
+        
+        setScene(new Scene(wsConsolePane, WEB_SERVER_CONSOLE_HEIGHT, WEB_SERVER_CONSOLE_WIDTH));
+        
+        try {
+            mbeanName = new ObjectName(WEB_SERVER_MBEAN_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new WebServerMonitor(), mbeanName);
+        } catch(JMException e) {
+            logger.log(Level.WARNING, "WebServer MBean could not be registered", e);
+            mbeanName = null;
+        }
     }
     
     
@@ -110,6 +349,7 @@ public class WebServer extends Stage {
     }
     
     public void stop() {
+        haltHealthProber();
         fireOnStopping();
         wsExecuterThread.interrupt();
     }
@@ -117,9 +357,29 @@ public class WebServer extends Stage {
     public void stopAndWait() throws InterruptedException {
         stop();
         wsExecuterThread.join();
+        
+        if(mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch(JMException e) {
+                logger.log(Level.WARNING, "WebServer MBean could not be unregistered", e);
+            }
+            mbeanName = null;
+        }
+    }
+    
+    /**
+     * The most recent health of the web server, or null if the web server
+     * has not yet started or has not yet been probed.
+     * 
+     * @return the web server health
+     */
+    public WebServerHealth getHealth() {
+        return health;
     }
     
     private synchronized void fireOnStarting() {
+        state = WebServerEvent.STARTING.getName();
         fireWebServerEvent(onStarting, WebServerEvent.STARTING);
     }
     
@@ -128,6 +388,9 @@ public class WebServer extends Stage {
     }
     
     private synchronized void fireOnStarted(int port) {
+        state = WebServerEvent.STARTED.getName();
+        this.port = port;
+        startedTime = System.currentTimeMillis();
         fireWebServerEvent(onStarted, WebServerEvent.STARTED, port);
     }
     
@@ -137,18 +400,46 @@ public class WebServer extends Stage {
     
     
     /**
-     * Call the event handler in Application thread with message.
+     * Queue a line of standard output from the web server for delivery
+     * to the event handler in Application thread.
      * 
-     * @param message 
+     * @param message
+     * @param timestamp the time the line was read
      */
-    private synchronized void fireOnMessage(String message) {
-        fireWebServerEvent(onMessage, WebServerEvent.MESSAGE, message);
+    private void fireOnMessage(String message, long timestamp) {
+        logger.log(Level.FINEST, "Queue WebServerEvent of type: {0}: with data: \"{1}\"", new Object[] { WebServerEvent.MESSAGE, message });
+        queueOutputEvent(pendingMessages, pendingMessageCount, new WebServerEvent<>(WebServerEvent.MESSAGE, message, timestamp));
+    }
+    
+    private synchronized EventHandler<WebServerEvent<String>> getOnMessage() {
+        return onMessage;
     }
     
     public synchronized void setOnMessage(EventHandler<WebServerEvent<String>> onMessage) {
         this.onMessage = onMessage;
     }
     
+    /**
+     * Queue a line of standard error from the web server for delivery
+     * to the event handler in Application thread.  These are delivered
+     * ahead of any pending standard output.
+     * 
+     * @param message
+     * @param timestamp the time the line was read
+     */
+    private void fireOnErrorMessage(String message, long timestamp) {
+        logger.log(Level.FINEST, "Queue WebServerEvent of type: {0}: with data: \"{1}\"", new Object[] { WebServerEvent.ERROR_MESSAGE, message });
+        queueOutputEvent(pendingErrorMessages, pendingErrorMessageCount, new WebServerEvent<>(WebServerEvent.ERROR_MESSAGE, message, timestamp));
+    }
+    
+    private synchronized EventHandler<WebServerEvent<String>> getOnErrorMessage() {
+        return onErrorMessage;
+    }
+    
+    public synchronized void setOnErrorMessage(EventHandler<WebServerEvent<String>> onErrorMessage) {
+        this.onErrorMessage = onErrorMessage;
+    }
+    
     private synchronized void fireOnError(String errmsg) {
         fireWebServerEvent(onError, WebServerEvent.ERROR, errmsg);
     }
@@ -158,6 +449,7 @@ public class WebServer extends Stage {
     }
     
     private synchronized void fireOnStopping() {
+        state = WebServerEvent.STOPPING.getName();
         fireWebServerEvent(onStopping, WebServerEvent.STOPPING);
     }
     
@@ -166,6 +458,9 @@ public class WebServer extends Stage {
     }
     
     private synchronized void fireOnStopped() {
+        state = WebServerEvent.STOPPED.getName();
+        port = 0;
+        startedTime = 0;
         fireWebServerEvent(onStopped, WebServerEvent.STOPPED);
     }
     
@@ -173,16 +468,69 @@ public class WebServer extends Stage {
         this.onStopped = onStopped;
     }
     
+    private synchronized void fireOnHealthChanged(WebServerHealth health) {
+        if(healthProberStopped) {
+            return;
+        }
+        fireWebServerEvent(onHealthChanged, WebServerEvent.HEALTH, health);
+    }
+    
+    public synchronized void setOnHealthChanged(EventHandler<WebServerEvent<WebServerHealth>> onHealthChanged) {
+        this.onHealthChanged = onHealthChanged;
+    }
+    
+    private synchronized void startHealthProber(int port) {
+        if(healthProberStopped) {
+            logger.log(Level.FINE, "Web server stopping, health prober not started");
+            return;
+        }
+        if(healthInterval <= 0) {
+            logger.log(Level.INFO, "Web server health probing disabled");
+            return;
+        }
+        wsHealthProberThread = new WebServerHealthProberThread(port);
+        wsHealthProberThread.start();
+    }
+    
+    /**
+     * Prevent the health prober from starting or publishing further events,
+     * and interrupt it without waiting for it to complete.
+     */
+    private synchronized void haltHealthProber() {
+        healthProberStopped = true;
+        if(wsHealthProberThread != null) {
+            wsHealthProberThread.interrupt();
+        }
+    }
+    
+    private void stopHealthProber() {
+        WebServerHealthProberThread prober;
+        synchronized(this) {
+            haltHealthProber();
+            prober = wsHealthProberThread;
+            wsHealthProberThread = null;
+        }
+        if(prober == null) {
+            return;
+        }
+        try {
+            prober.join();
+        } catch(InterruptedException e) {
+            // continue without joining
+        }
+    }
+    
     private void fireWebServerEvent( final EventHandler<WebServerEvent> handler, EventType<WebServerEvent> eventType) {
         logger.log(Level.FINEST, "Fire WebServerEvent of type: {0}", eventType);
         final WebServerEvent event = new WebServerEvent(eventType, null);
-        Platform.runLater(new Runnable() {
+        runLater(new Runnable() {
             @Override
             public void run() {
                 if(handler != null) {
                     handler.handle(event);
                 }
                 fireEvent(event);
+                eventsDispatched.increment();
             }
         });
     }
@@ -190,13 +538,163 @@ public class WebServer extends Stage {
     private <T> void fireWebServerEvent(final EventHandler<WebServerEvent<T>> handler, EventType<WebServerEvent<T>> eventType, T data) {
         logger.log(Level.FINEST, "Fire WebServerEvent of type: {0}: with data: \"{1}\"", new Object[] { eventType, data });
         final WebServerEvent<T> event = new WebServerEvent<>(eventType, data);
-        Platform.runLater(new Runnable() {
+        runLater(new Runnable() {
             @Override
             public void run() {
                 if(handler != null) {
                     handler.handle(event);
                 }
                 fireEvent(event);
+                eventsDispatched.increment();
+            }
+        });
+    }
+    
+    /**
+     * Call Platform.runLater() keeping count of the tasks not yet run.
+     * 
+     * @param runnable 
+     */
+    private void runLater(final Runnable runnable) {
+        pendingRunLater.increment();
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                pendingRunLater.decrement();
+                runnable.run();
+            }
+        });
+    }
+    
+    /**
+     * Queue an output event, discarding the oldest pending event of the
+     * same kind if the Application thread has fallen so far behind that it
+     * would be evicted from the console before being seen anyway.
+     */
+    private void queueOutputEvent(Queue<WebServerEvent<String>> pending, AtomicInteger pendingCount, WebServerEvent<String> event) {
+        pending.offer(event);
+        if(pendingCount.incrementAndGet() > WEB_SERVER_CONSOLE_MAX_LINES && pending.poll() != null) {
+            pendingCount.decrementAndGet();
+            eventsDropped.increment();
+        }
+        scheduleOutputDispatch();
+    }
+    
+    private void scheduleOutputDispatch() {
+        if(outputDispatchScheduled.compareAndSet(false, true)) {
+            runLater(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchOutput();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Deliver pending output events in Application thread. Pending error
+     * messages are delivered ahead of messages, but both are delivered in
+     * limited batches, so that a flood of output on either stream can
+     * neither starve the other stream nor the Application thread.
+     */
+    private void dispatchOutput() {
+        outputDispatchScheduled.set(false);
+        
+        int errorMessages = dispatchErrorMessages(WEB_SERVER_OUTPUT_DISPATCH_BATCH_SIZE);
+        
+        WebServerEvent<String> event;
+        for(int count = 0; count < WEB_SERVER_OUTPUT_DISPATCH_BATCH_SIZE; count++) {
+            event = pendingMessages.poll();
+            if(event == null) {
+                break;
+            }
+            pendingMessageCount.decrementAndGet();
+            dispatchWebServerEvent(getOnMessage(), event);
+            errorMessages += dispatchErrorMessages(WEB_SERVER_OUTPUT_DISPATCH_BATCH_SIZE - errorMessages);
+        }
+        
+        if(!pendingMessages.isEmpty() || !pendingErrorMessages.isEmpty()) {
+            scheduleOutputDispatch();
+        }
+    }
+    
+    /**
+     * @param limit the maximum number of error messages to deliver
+     * @return the number of error messages delivered
+     */
+    private int dispatchErrorMessages(int limit) {
+        int count = 0;
+        WebServerEvent<String> event;
+        while(count < limit && (event = pendingErrorMessages.poll()) != null) {
+            pendingErrorMessageCount.decrementAndGet();
+            dispatchWebServerEvent(getOnErrorMessage(), event);
+            count++;
+        }
+        return count;
+    }
+    
+    private <T> void dispatchWebServerEvent(EventHandler<WebServerEvent<T>> handler, WebServerEvent<T> event) {
+        if(handler != null) {
+            handler.handle(event);
+        }
+        fireEvent(event);
+        eventsDispatched.increment();
+    }
+    
+    /**
+     * Find the jcmd tool, preferring the JDK used by the web server.
+     * 
+     * @return the jcmd executable, or null if not found
+     */
+    private File findJcmd() {
+        List<String> javaHomes = new ArrayList<>();
+        if(processJavaHome != null) {
+            javaHomes.add(processJavaHome);
+        }
+        String javaHome = System.getProperty("java.home");
+        if(javaHome != null) {
+            javaHomes.add(javaHome);
+            javaHomes.add(new File(javaHome).getParent());
+        }
+        for(String home : javaHomes) {
+            File jcmd = new File(new File(home, "bin"), "jcmd");
+            if(jcmd.isFile()) {
+                return jcmd;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Profiling needs the jcmd tool to control the recording, and
+     * the jdk.jfr module in this JVM to summarize it.
+     * 
+     * @return true if the web server can be profiled
+     */
+    private boolean isProfilingAvailable() {
+        try {
+            Class.forName("jdk.jfr.consumer.RecordingFile", false, WebServer.class.getClassLoader());
+        } catch(ClassNotFoundException | LinkageError e) {
+            logger.log(Level.INFO, "Profiling unavailable, flight recorder API not found");
+            return false;
+        }
+        if(findJcmd() == null) {
+            logger.log(Level.INFO, "Profiling unavailable, Java diagnostic command (jcmd) not found");
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Append a line of text to the console in Application thread.
+     * 
+     * @param text 
+     */
+    private void appendConsole(final String text) {
+        runLater(new Runnable() {
+            @Override
+            public void run() {
+                wsConsole.appendText(text);
             }
         });
     }
@@ -207,6 +705,10 @@ public class WebServer extends Stage {
         
         private Queue<Integer> lines = new LinkedList<>();
         
+        private volatile int lineCount = 0;
+        
+        private final LongAdder linesEvicted = new LongAdder();
+        
         WebServerConsole(int maxLines) {
             this.maxLines = maxLines;
             setEditable(false);
@@ -216,13 +718,122 @@ public class WebServer extends Stage {
         public void appendText(String text) {
             while(lines.size() >= maxLines) {
                 deleteText(0, lines.poll());
+                linesEvicted.increment();
             }
             lines.offer(text.length()+1);
+            lineCount = lines.size();
             super.appendText(text);
             super.appendText("\n");
         }
     }
     
+    /**
+     * WebServerMonitor implements the JMX interface to the runtime metrics
+     * of this web server. The counters are only summed when read, so that
+     * keeping them costs little on the paths that update them.
+     */
+    private class WebServerMonitor implements WebServerMXBean {
+        
+        private final WebServerRate linesReadRate = new WebServerRate();
+        
+        private final WebServerRate linesEvictedRate = new WebServerRate();
+        
+        @Override
+        public String getState() {
+            return state;
+        }
+        
+        @Override
+        public String getHealth() {
+            WebServerHealth h = health;
+            return (h == null) ? null : h.toString();
+        }
+        
+        @Override
+        public int getPort() {
+            return port;
+        }
+        
+        @Override
+        public long getUptime() {
+            long started = startedTime;
+            return (started == 0) ? 0 : System.currentTimeMillis() - started;
+        }
+        
+        @Override
+        public long getRestartCount() {
+            return Math.max(processStarts.sum() - 1, 0);
+        }
+        
+        @Override
+        public long getLinesRead() {
+            return linesRead.sum();
+        }
+        
+        @Override
+        public double getLinesReadPerSecond() {
+            return linesReadRate.sample(linesRead.sum());
+        }
+        
+        @Override
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+        
+        @Override
+        public long getEventsDispatched() {
+            return eventsDispatched.sum();
+        }
+        
+        @Override
+        public long getEventsDropped() {
+            return eventsDropped.sum();
+        }
+        
+        @Override
+        public long getPendingRunLater() {
+            return pendingRunLater.sum();
+        }
+        
+        @Override
+        public int getConsoleLineCount() {
+            return wsConsole.lineCount;
+        }
+        
+        @Override
+        public long getConsoleLinesEvicted() {
+            return wsConsole.linesEvicted.sum();
+        }
+        
+        @Override
+        public double getConsoleLinesEvictedPerSecond() {
+            return linesEvictedRate.sample(wsConsole.linesEvicted.sum());
+        }
+    }
+    
+    /**
+     * WebServerRate computes the rate of change of a counter between
+     * samples taken at least one second apart.
+     */
+    private static class WebServerRate {
+        
+        private long sampleTime = System.nanoTime();
+        
+        private long sampleCount = 0;
+        
+        private double rate = 0.0;
+        
+        synchronized double sample(long count) {
+            long now = System.nanoTime();
+            if( now - sampleTime >= 1000000000L ) {
+                rate = (count - sampleCount) / ((now - sampleTime) / 1.0e9);
+                sampleTime = now;
+                sampleCount = count;
+            }
+            return rate;
+        }
+    }
+    
     /**
      * WebServerExecuterThread starts the web server process and waits
      * for it to complete. 'Error' events are published in the case
@@ -296,9 +907,36 @@ public class WebServer extends Stage {
             environment.put("CATALINA_HOME", catalinaBase.getAbsolutePath());
             environment.put("CATALINA_TMPDIR", catalinaTmp.getAbsolutePath());
             
+            // crash reports are written to the configuration directory
+            File errorFile = new File(webberConfigPath, WEB_SERVER_ERROR_FILE_NAME);
+            String opts = quoteCatalinaOpt(String.format(WEB_SERVER_ERROR_FILE_OPT, errorFile.getAbsolutePath()));
+            
+            File recording = new File(webberConfigPath, WEB_SERVER_RECORDING_CONTINUOUS_NAME + ".jfr");
+            File repository = new File(webberConfigPath, "jfr");
+            if(continuousRecording) {
+                opts += " " + quoteCatalinaOpt(String.format(WEB_SERVER_RECORDING_CONTINUOUS_START_OPT,
+                                        WEB_SERVER_RECORDING_CONTINUOUS_NAME, recording.getAbsolutePath()))
+                        + " " + quoteCatalinaOpt(String.format(WEB_SERVER_RECORDING_CONTINUOUS_REPOSITORY_OPT,
+                                        repository.getAbsolutePath()));
+                if(!repository.isDirectory() && !repository.mkdir()) {
+                    logger.log(Level.WARNING, "Flight recorder repository could not be created: {0}", repository);
+                }
+            }
+            
+            String catalinaOpts = System.getenv("CATALINA_OPTS");
+            if(catalinaOpts != null && !catalinaOpts.trim().isEmpty()) {
+                opts = catalinaOpts + " " + opts;
+            }
+            environment.put("CATALINA_OPTS", opts);
+            
             ProcessBuilder builder = new ProcessBuilder(commands);
             builder.environment().putAll(environment);
-            builder.redirectErrorStream(true);
+            if(continuousRecording) {
+                // the JVM writes its emergency flight recording on a crash
+                // (hs_err_pid*.jfr) to its working directory
+                builder.directory(webberConfigPath);
+            }
+            processJavaHome = builder.environment().get("JAVA_HOME");
 
             Process process;
             try {
@@ -309,26 +947,43 @@ public class WebServer extends Stage {
                 fireOnError("Catalina could not be started.");
                 return;
             }
+            processStarts.increment();
+            processId = process.pid();
+            long pid = processId;
 
-            WebServerReaderThread wsReaderThread = new WebServerReaderThread(process.getInputStream());
-            wsReaderThread.setDaemon(true);
-            wsReaderThread.start();
+            WebServerOutputMultiplexer wsOutputMultiplexer = new WebServerOutputMultiplexer(process);
+            wsOutputMultiplexer.start();
 
+            Integer rtn = null;
             try {
-                int rtn = process.waitFor();
-                logger.log(Level.WARNING, "Catalina stopped unexceptedly with status: {0}", rtn);
-                fireOnError("Catalina stopped unexpectedly.");
-                fireOnStopping();
+                rtn = process.waitFor();
             } catch( InterruptedException e ) {
                 process.destroy();
             }
 
+            processId = 0;
+            
+            wsOutputMultiplexer.close();
             try {
-                wsReaderThread.join();
+                wsOutputMultiplexer.join();
             } catch(InterruptedException e) {
                 // continue without joining
             }
             
+            stopHealthProber();
+            
+            if(rtn != null) {
+                logger.log(Level.WARNING, "Catalina stopped unexceptedly with status: {0}", rtn);
+                appendConsole("Webber: Crash report, if any: " + errorFile.getAbsolutePath().replace("%p", String.valueOf(pid)));
+                if(continuousRecording) {
+                    appendConsole("Webber: Continuous flight recording: " + recording.getAbsolutePath());
+                    appendConsole("Webber: Emergency flight recording, if any: " + new File(webberConfigPath, "hs_err_pid" + pid + ".jfr").getAbsolutePath());
+                    appendConsole("Webber: Flight recorder repository: " + repository.getAbsolutePath());
+                }
+                fireOnError("Catalina stopped unexpectedly.");
+                fireOnStopping();
+            }
+            
             if(!deleteTempDirectory(catalinaTmp)) {
                 logger.log(Level.WARNING, "Catalina temp directory could not deleted: {0}", catalinaTmp);
                 fireOnError("Catalina temp directory not deleted.");
@@ -339,47 +994,535 @@ public class WebServer extends Stage {
     }
     
     /**
-     * WebServerReaderThread reads the combined-output from the web server
-     * process and publishes a 'message' event for each line received from the 
-     * web server.  The most imported function of this class is to discover
+     * WebServerProfilerThread records the web server process with Java
+     * Flight Recorder, using the jcmd tool to attach to the process.  For
+     * a duration greater than zero, a profiling recording is started, dumped
+     * to the configuration directory after the duration and then stopped,
+     * otherwise the continuous recording is dumped.  A summary of the hot
+     * methods and allocations found in the recording is then appended
+     * to the console.
+     */
+    private class WebServerProfilerThread extends Thread {
+        
+        private final int duration;
+        
+        public WebServerProfilerThread(int duration) {
+            this.duration = duration;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                long pid = processId;
+                if( pid == 0 ) {
+                    throw new IOException("Web server is not running");
+                }
+                
+                String webberConfig = Webber.getConfigDirectory();
+                if( webberConfig == null ) {
+                    throw new IOException("Webber configuration directory not found");
+                }
+                
+                String name = (duration > 0) ? WEB_SERVER_RECORDING_PROFILE_NAME : WEB_SERVER_RECORDING_CONTINUOUS_NAME;
+                String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+                File recording = new File(webberConfig, name + "-" + timestamp + ".jfr");
+                
+                if( duration > 0 ) {
+                    appendConsole("Webber: Profiling web server for " + duration + " seconds...");
+                    jcmd(pid, "JFR.start", "name=" + name, "settings=profile");
+                    try {
+                        Thread.sleep(duration * 1000L);
+                    } finally {
+                        jcmd(pid, "JFR.dump", "name=" + name, "filename=\"" + recording.getAbsolutePath() + "\"");
+                        jcmd(pid, "JFR.stop", "name=" + name);
+                    }
+                } else {
+                    jcmd(pid, "JFR.dump", "name=" + name, "filename=\"" + recording.getAbsolutePath() + "\"");
+                }
+                
+                appendConsole("Webber: Flight recording saved: " + recording.getAbsolutePath());
+                summarize(recording);
+                
+            } catch(IOException | InterruptedException e) {
+                logger.log(Level.WARNING, "Web server flight recording failed", e);
+                appendConsole("Webber: Flight recording failed: " + e.getMessage());
+            } finally {
+                runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean stopped = (processId == 0) || !profilingAvailable;
+                        if( duration > 0 ) {
+                            profileRunning = false;
+                            profileButton.setDisable(stopped);
+                        } else {
+                            dumpRunning = false;
+                            dumpButton.setDisable(stopped);
+                        }
+                    }
+                });
+            }
+        }
+        
+        private void jcmd(long pid, String... command) throws IOException, InterruptedException {
+            List<String> commands = new ArrayList<>();
+            File jcmd = findJcmd();
+            if( jcmd == null ) {
+                throw new IOException("Java diagnostic command (jcmd) not found");
+            }
+            commands.add(jcmd.getPath());
+            commands.add(String.valueOf(pid));
+            commands.addAll(Arrays.asList(command));
+            
+            Process process = new ProcessBuilder(commands).redirectErrorStream(true).start();
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while( (line = reader.readLine()) != null ) {
+                    output.append(line).append('\n');
+                }
+            }
+            int rtn = process.waitFor();
+            logger.log(Level.FINE, "Command {0} returned {1}: {2}", new Object[] { commands, rtn, output });
+            // jcmd exits normally when a diagnostic command reports an error
+            if( rtn != 0 || WEB_SERVER_JCMD_ERROR_PATTERN.matcher(output).find() ) {
+                throw new IOException(command[0] + " failed: " + output.toString().trim());
+            }
+        }
+        
+        private void summarize(File recording) throws IOException {
+            Map<String,Long> methods = new HashMap<>();
+            Map<String,Long> allocations = new HashMap<>();
+            
+            try (RecordingFile file = new RecordingFile(recording.toPath())) {
+                while( file.hasMoreEvents() ) {
+                    RecordedEvent event = file.readEvent();
+                    switch( event.getEventType().getName() ) {
+                        case "jdk.ExecutionSample":
+                            RecordedStackTrace stackTrace = event.getStackTrace();
+                            if( stackTrace != null && !stackTrace.getFrames().isEmpty() ) {
+                                RecordedFrame frame = stackTrace.getFrames().get(0);
+                                RecordedMethod method = frame.getMethod();
+                                accumulate(methods, method.getType().getName() + "." + method.getName(), 1);
+                            }
+                            break;
+                        case "jdk.ObjectAllocationSample":
+                            accumulate(allocations, event.<RecordedClass>getValue("objectClass").getName(), event.getLong("weight"));
+                            break;
+                        case "jdk.ObjectAllocationInNewTLAB":
+                            accumulate(allocations, event.<RecordedClass>getValue("objectClass").getName(), event.getLong("tlabSize"));
+                            break;
+                        case "jdk.ObjectAllocationOutsideTLAB":
+                            accumulate(allocations, event.<RecordedClass>getValue("objectClass").getName(), event.getLong("allocationSize"));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+            
+            appendSummary("Hot methods (execution samples):", methods);
+            appendSummary("Allocations (bytes):", allocations);
+        }
+        
+        private void accumulate(Map<String,Long> totals, String key, long value) {
+            Long total = totals.get(key);
+            totals.put(key, (total == null) ? value : total + value);
+        }
+        
+        private void appendSummary(String title, Map<String,Long> totals) {
+            appendConsole("Webber: " + title);
+            if( totals.isEmpty() ) {
+                appendConsole("    (none recorded)");
+                return;
+            }
+            
+            long sum = 0;
+            for(long value : totals.values()) {
+                sum += value;
+            }
+            
+            List<Map.Entry<String,Long>> entries = new ArrayList<>(totals.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String,Long>>() {
+                @Override
+                public int compare(Map.Entry<String,Long> e1, Map.Entry<String,Long> e2) {
+                    return Long.compare(e2.getValue(), e1.getValue());
+                }
+            });
+            
+            for(Map.Entry<String,Long> entry : entries.subList(0, Math.min(entries.size(), WEB_SERVER_PROFILE_SUMMARY_SIZE))) {
+                appendConsole(String.format("    %5.1f%%  %s", 100.0 * entry.getValue() / sum, entry.getKey()));
+            }
+        }
+    }
+    
+    /**
+     * WebServerOutputMultiplexer reads both the standard output and the
+     * standard error of the web server process from a single thread, and
+     * publishes a 'message' event for each line of standard output and
+     * an 'error message' event for each line of standard error. The streams
+     * are polled without blocking and standard error is always drained
+     * first, so that errors are not held up behind verbose output.  Each
+     * event carries the time at which its line was read.
+     * <p>
+     * The most imported function of this class is to discover
      * the port on which the web server is listening and then publishing
      * the 'started' event.  It does this by parsing the output from the
      * web server until it receives a specially formated string.
      * {@see #WEB_SERVER_PORT_REGEX}
      */
-    
-    private class WebServerReaderThread extends Thread {
-         
-        private BufferedReader reader = null;
+    private class WebServerOutputMultiplexer extends Thread {
+        
+        private final Process process;
+        
+        private final WebServerOutputSource[] sources;
+        
+        private volatile boolean closing = false;
+        
+        private boolean starting = true;
+        
+        public WebServerOutputMultiplexer(Process process) {
+            this.process = process;
+            sources = new WebServerOutputSource[] {
+                new WebServerOutputSource(process.getErrorStream(), true),
+                new WebServerOutputSource(process.getInputStream(), false)
+            };
+            setDaemon(true);
+        }
         
-        public WebServerReaderThread(InputStream inputStream) {
-            reader = new BufferedReader(new InputStreamReader(inputStream));
+        /**
+         * Signal that the process has exited or is being destroyed, both
+         * streams continue to be polled until the process has exited, then
+         * the remaining output is read until end-of-file and this thread
+         * completes.
+         */
+        public void close() {
+            closing = true;
+            interrupt();
         }
         
         @Override
         public void run() {
-            String line;
-            Matcher matcher;
-            boolean starting = true;
-            
             try {
                 while( true ) {
-                    line = reader.readLine();
-                    if( line == null ) {
-                        return; // EOF
+                    boolean idle = true;
+                    for(WebServerOutputSource source : sources) {
+                        if( source.poll() ) {
+                            idle = false;
+                        }
                     }
-                    if( starting ) {
-                        matcher = Pattern.compile(WEB_SERVER_PORT_REGEX).matcher(line);
-                        if( matcher.find() ) {       
-                            starting = false;
-                            fireOnStarted(Integer.valueOf(matcher.group(1)));
+                    if( idle ) {
+                        // Only block on a stream once the process has exited,
+                        // otherwise it could block writing to the other stream.
+                        if( closing && !process.isAlive() ) {
+                            break;
+                        }
+                        try {
+                            Thread.sleep(WEB_SERVER_OUTPUT_POLL_INTERVAL);
+                        } catch(InterruptedException e) {
+                            // closing
                         }
                     }
-                    fireOnMessage(line);
-                }   
+                }
+                for(WebServerOutputSource source : sources) {
+                    source.drain();
+                }
             } catch( IOException e ) {
                 // Normal to be thrown when process exits.
             }
         }
+        
+        private void publish(String line, boolean error, long timestamp) {
+            if( starting ) {
+                Matcher matcher = WEB_SERVER_PORT_PATTERN.matcher(line);
+                if( matcher.find() ) {
+                    starting = false;
+                    int port = Integer.valueOf(matcher.group(1));
+                    fireOnStarted(port);
+                    startHealthProber(port);
+                }
+            }
+            if( error ) {
+                fireOnErrorMessage(line, timestamp);
+            } else {
+                fireOnMessage(line, timestamp);
+            }
+        }
+        
+        /**
+         * WebServerOutputSource splits the bytes read from one of
+         * the process streams into lines.
+         */
+        private class WebServerOutputSource {
+            
+            private final InputStream input;
+            
+            private final boolean error;
+            
+            private final byte[] buffer = new byte[WEB_SERVER_OUTPUT_BUFFER_SIZE];
+            
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            
+            private boolean eof = false;
+            
+            WebServerOutputSource(InputStream input, boolean error) {
+                this.input = input;
+                this.error = error;
+            }
+            
+            /**
+             * Read the output that is available without blocking. Standard
+             * error is given priority by reading several buffers per poll,
+             * standard output is read one buffer at a time.
+             * 
+             * @return true if any output was read
+             */
+            boolean poll() throws IOException {
+                int reads = error ? WEB_SERVER_OUTPUT_ERROR_READS_PER_POLL : 1;
+                boolean read = false;
+                while( !eof && reads-- > 0 ) {
+                    int available = input.available();
+                    if( available <= 0 ) {
+                        break;
+                    }
+                    read(Math.min(available, buffer.length));
+                    read = true;
+                }
+                return read;
+            }
+            
+            /**
+             * Read the output until end-of-file, blocking if needed, which
+             * is only done once the process has exited.
+             */
+            void drain() throws IOException {
+                while( !eof ) {
+                    read(buffer.length);
+                }
+            }
+            
+            private void read(int length) throws IOException {
+                int count = input.read(buffer, 0, length);
+                long timestamp = System.currentTimeMillis();
+                if( count > 0 ) {
+                    bytesRead.add(count);
+                }
+                if( count < 0 ) {
+                    eof = true;
+                    if( line.size() > 0 ) {
+                        flush(timestamp);
+                    }
+                    return;
+                }
+                for(int idx = 0; idx < count; idx++) {
+                    if( buffer[idx] == '\n' ) {
+                        flush(timestamp);
+                    } else {
+                        line.write(buffer[idx]);
+                    }
+                }
+            }
+            
+            private void flush(long timestamp) {
+                String text = new String(line.toByteArray(), Charset.defaultCharset());
+                line.reset();
+                linesRead.increment();
+                if( text.endsWith("\r") ) {
+                    text = text.substring(0, text.length()-1);
+                }
+                publish(text, error, timestamp);
+            }
+        }
+    }
+    
+    /**
+     * WebServerHealthProberThread periodically sends a request to the
+     * web server, using a non-blocking socket channel so that the timeout
+     * is enforced for each step of the request. It keeps a rolling window
+     * of response latencies and publishes a 'health' event whenever the
+     * status of the web server changes.  A single failed probe, an error
+     * response or a high 90th percentile latency marks the web server as
+     * degraded, repeated failed probes mark it as unresponsive.
+     */
+    private class WebServerHealthProberThread extends Thread {
+        
+        private final int port;
+        
+        private final double[] latencies = new double[WEB_SERVER_HEALTH_LATENCY_WINDOW];
+        
+        private int latencyCount = 0;
+        
+        private int latencyIndex = 0;
+        
+        private int failures = 0;
+        
+        private Selector selector;
+        
+        public WebServerHealthProberThread(int port) {
+            this.port = port;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                selector = Selector.open();
+            } catch(IOException e) {
+                logger.log(Level.WARNING, "Web server health prober could not be started", e);
+                return;
+            }
+            
+            try {
+                while( !isInterrupted() ) {
+                    long start = System.nanoTime();
+                    int status = probe(start);
+                    if( isInterrupted() ) {
+                        return;
+                    }
+                    update(status, (System.nanoTime() - start) / 1.0e6);
+                    
+                    long elapsed = (System.nanoTime() - start) / 1000000L;
+                    if( elapsed < healthInterval ) {
+                        Thread.sleep(healthInterval - elapsed);
+                    }
+                }
+            } catch(InterruptedException e) {
+                // stopped
+            } finally {
+                try {
+                    selector.close();
+                } catch(IOException e) {
+                    // ignore
+                }
+            }
+        }
+        
+        /**
+         * Send a request to the web server and read the response status line.
+         * 
+         * @param start the time, from System.nanoTime(), the probe started
+         * @return the HTTP response status code, or -1 if the probe failed
+         */
+        private int probe(long start) {
+            long deadline = start + healthTimeout * 1000000L;
+            
+            String request = "GET " + healthPath + " HTTP/1.1\r\n"
+                    + "Host: localhost:" + port + "\r\n"
+                    + "User-Agent: Webber\r\n"
+                    + "Connection: close\r\n\r\n";
+            ByteBuffer requestBuffer = ByteBuffer.wrap(request.getBytes(Charset.forName("US-ASCII")));
+            ByteBuffer responseBuffer = ByteBuffer.allocate(WEB_SERVER_HEALTH_RESPONSE_BUFFER_SIZE);
+            
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+                
+                while( true ) {
+                    long remaining = (deadline - System.nanoTime()) / 1000000L;
+                    if( remaining <= 0 ) {
+                        logger.log(Level.FINE, "Web server health probe timed out");
+                        return -1;
+                    }
+                    selector.select(remaining);
+                    if( Thread.currentThread().isInterrupted() ) {
+                        return -1;
+                    }
+                    if( !selector.selectedKeys().remove(key) ) {
+                        continue;
+                    }
+                    if( key.isConnectable() && channel.finishConnect() ) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                    if( key.isValid() && key.isWritable() ) {
+                        channel.write(requestBuffer);
+                        if( !requestBuffer.hasRemaining() ) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    }
+                    if( key.isValid() && key.isReadable() ) {
+                        int count = channel.read(responseBuffer);
+                        String response = new String(responseBuffer.array(), 0, responseBuffer.position(), Charset.forName("US-ASCII"));
+                        if( response.contains("\r\n") ) {
+                            Matcher matcher = WEB_SERVER_HEALTH_STATUS_PATTERN.matcher(response);
+                            if( matcher.find() ) {
+                                return Integer.valueOf(matcher.group(1));
+                            }
+                            logger.log(Level.FINE, "Web server health probe response invalid");
+                            return -1;
+                        }
+                        if( count < 0 || !responseBuffer.hasRemaining() ) {
+                            logger.log(Level.FINE, "Web server health probe response incomplete");
+                            return -1;
+                        }
+                    }
+                }
+            } catch(IOException e) {
+                logger.log(Level.FINE, "Web server health probe failed", e);
+                return -1;
+            } finally {
+                if( channel != null ) {
+                    try {
+                        channel.close();
+                        selector.selectNow();
+                    } catch(IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+        
+        private void update(int status, double latency) {
+            WebServerHealth.Status healthStatus;
+            String reason;
+            
+            if( status < 0 ) {
+                failures++;
+                if( failures >= WEB_SERVER_HEALTH_UNRESPONSIVE_FAILURES ) {
+                    healthStatus = WebServerHealth.Status.UNRESPONSIVE;
+                    reason = "No response to " + failures + " consecutive probes";
+                } else {
+                    healthStatus = WebServerHealth.Status.DEGRADED;
+                    reason = "No response to probe";
+                }
+            } else {
+                failures = 0;
+                latencies[latencyIndex] = latency;
+                latencyIndex = (latencyIndex + 1) % latencies.length;
+                latencyCount = Math.min(latencyCount + 1, latencies.length);
+                
+                if( status >= 500 ) {
+                    healthStatus = WebServerHealth.Status.DEGRADED;
+                    reason = "Error response status " + status;
+                } else if( percentile(90) > healthDegradedLatency ) {
+                    healthStatus = WebServerHealth.Status.DEGRADED;
+                    reason = "High response latency";
+                } else {
+                    healthStatus = WebServerHealth.Status.HEALTHY;
+                    reason = "Responding normally";
+                }
+            }
+            
+            WebServerHealth previous = health;
+            health = new WebServerHealth(healthStatus, reason, percentile(50), percentile(90), percentile(99), latencyCount);
+            logger.log(Level.FINEST, "Web server health: {0}", health);
+            
+            if( previous == null || previous.getStatus() != healthStatus ) {
+                logger.log(Level.INFO, "Web server health changed: {0}", health);
+                fireOnHealthChanged(health);
+            }
+        }
+        
+        private double percentile(int percent) {
+            if( latencyCount == 0 ) {
+                return 0.0;
+            }
+            double[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100.0 * latencyCount);
+            return sorted[Math.max(rank - 1, 0)];
+        }
     }
 }
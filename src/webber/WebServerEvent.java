@@ -23,19 +23,40 @@ public class WebServerEvent<T> extends Event {
     
     public static final EventType<WebServerEvent<String>> ERROR = new EventType<>(ANY, "ERROR");
     
+    public static final EventType<WebServerEvent<String>> ERROR_MESSAGE = new EventType<>(ERROR, "ERROR_MESSAGE");
+    
+    public static final EventType<WebServerEvent<WebServerHealth>> HEALTH = new EventType<>(ANY, "HEALTH");
+    
     public static final EventType<WebServerEvent> STOPPING = new EventType<>(ANY, "STOPPING");
     
     public static final EventType<WebServerEvent> STOPPED = new EventType<>(ANY, "STOPPED");
     
     final private T data;
+    
+    final private long timestamp;
 
     
     WebServerEvent(EventType<WebServerEvent<T>> eventType, T data) {
+        this(eventType, data, System.currentTimeMillis());
+    }
+    
+    WebServerEvent(EventType<WebServerEvent<T>> eventType, T data, long timestamp) {
         super(eventType);
         this.data = data;
+        this.timestamp = timestamp;
     }
 
     public T getData() {
         return data;
     }
+    
+    /**
+     * The time, in milliseconds since the epoch, at which the event
+     * originated (for output events, the time the line was read).
+     * 
+     * @return the event timestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
 }
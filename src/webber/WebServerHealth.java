@@ -0,0 +1,82 @@
+/*
+ */
+package webber;
+
+/**
+ * WebServerHealth is a snapshot of the health of a running
+ * {@link webber.WebServer WebServer} as measured by periodically
+ * probing the web server, including rolling latency percentiles
+ * over the most recent successful probes.
+ *
+ * @author maxwelld
+ */
+public class WebServerHealth {
+
+    public enum Status { HEALTHY, DEGRADED, UNRESPONSIVE }
+
+    final private Status status;
+
+    final private String reason;
+
+    final private double latency50;
+
+    final private double latency90;
+
+    final private double latency99;
+
+    final private int samples;
+
+
+    WebServerHealth(Status status, String reason, double latency50, double latency90, double latency99, int samples) {
+        this.status = status;
+        this.reason = reason;
+        this.latency50 = latency50;
+        this.latency90 = latency90;
+        this.latency99 = latency99;
+        this.samples = samples;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return a short description of why the web server has this status
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the median probe latency in milliseconds
+     */
+    public double getLatency50() {
+        return latency50;
+    }
+
+    /**
+     * @return the 90th percentile probe latency in milliseconds
+     */
+    public double getLatency90() {
+        return latency90;
+    }
+
+    /**
+     * @return the 99th percentile probe latency in milliseconds
+     */
+    public double getLatency99() {
+        return latency99;
+    }
+
+    /**
+     * @return the number of latency samples in the rolling window
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s) p50=%.1fms p90=%.1fms p99=%.1fms", status, reason, latency50, latency90, latency99);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ */
+package webber;
+
+/**
+ * WebServerMXBean exposes the runtime metrics of a
+ * {@link webber.WebServer WebServer} for monitoring with JMX.
+ * Rates are measured between successive samples, no more often
+ * than once per second.
+ * 
+ * @author maxwelld
+ */
+public interface WebServerMXBean {
+    
+    /**
+     * @return the web server state, one of STARTING, STARTED, STOPPING or STOPPED
+     */
+    String getState();
+    
+    /**
+     * @return the web server health status, or null if not yet probed
+     */
+    String getHealth();
+    
+    /**
+     * @return the port on which the web server is listening, or 0 if not started
+     */
+    int getPort();
+    
+    /**
+     * @return the time in milliseconds since the web server started, or 0 if not started
+     */
+    long getUptime();
+    
+    /**
+     * @return the number of times the web server process has been restarted
+     */
+    long getRestartCount();
+    
+    long getLinesRead();
+    
+    double getLinesReadPerSecond();
+    
+    long getBytesRead();
+    
+    long getEventsDispatched();
+    
+    /**
+     * @return the number of output events discarded because the
+     * Application thread could not keep up
+     */
+    long getEventsDropped();
+    
+    /**
+     * @return the number of tasks passed to Platform.runLater() that have not yet run
+     */
+    long getPendingRunLater();
+    
+    int getConsoleLineCount();
+    
+    long getConsoleLinesEvicted();
+    
+    double getConsoleLinesEvictedPerSecond();
+}
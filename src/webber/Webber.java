@@ -3,12 +3,15 @@
 package webber;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javafx.application.Application;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
@@ -54,8 +57,14 @@ public class Webber extends Application {
     
     private static final String WEBBER_STATUS_STARTED_MESSAGE = "Started";
     
+    private static final String WEBBER_STATUS_DEGRADED_MESSAGE = "Degraded: %s (p90 %.0f ms)";
+    
+    private static final String WEBBER_STATUS_UNRESPONSIVE_MESSAGE = "Not Responding: %s";
+    
     private static final String WEBBER_CLASS = Webber.class.getName().replace(".","/")+".class";
     
+    private static final String WEBBER_MBEAN_NAME = "webber:type=Webber";
+    
     private static final Logger logger = Logger.getLogger(Webber.class.getName());
     
     
@@ -128,10 +137,22 @@ public class Webber extends Application {
     
     private WebServerStatus webServerStatus;
     
+    private boolean webServerHealthShown;
+    
+    private boolean webServerErrorShown;
+    
+    private volatile long startTime;
+    
+    private volatile int webClientCount;
+    
+    private ObjectName mbeanName;
+    
 
     @Override
     public void start(Stage primaryStage) {
         
+        startTime = System.currentTimeMillis();
+        
         parameters = new Parameters();
         
         icon = getCustomIcon();
@@ -145,6 +166,13 @@ public class Webber extends Application {
  
         webServerStatus = new WebServerStatus();
         
+        try {
+            mbeanName = new ObjectName(WEBBER_MBEAN_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new WebberMonitor(), mbeanName);
+        } catch(JMException e) {
+            logger.log(Level.WARNING, "Webber MBean could not be registered", e);
+            mbeanName = null;
+        }
         
         final EventHandler<KeyEvent> onConsoleShortcutTyped = new EventHandler<KeyEvent>() {
             @Override
@@ -186,15 +214,47 @@ public class Webber extends Application {
                     wc.addEventFilter(KeyEvent.KEY_TYPED, onConsoleShortcutTyped);
                     wc.load(url.replace(":0", webServerPort));
                     wc.show();
+                    webClientCount++;
                 }
                 
                 webServerStatus.hide();
             }
         });
         
+        webServer.setOnHealthChanged(new EventHandler<WebServerEvent<WebServerHealth>>() {
+            @Override
+            public void handle(WebServerEvent<WebServerHealth> t) {
+                if(webServerErrorShown) {
+                    return;
+                }
+                WebServerHealth health = t.getData();
+                switch(health.getStatus()) {
+                    case DEGRADED:
+                        webServerStatus.setWarning(String.format(WEBBER_STATUS_DEGRADED_MESSAGE, health.getReason(), health.getLatency90()));
+                        webServerStatus.show();
+                        webServerHealthShown = true;
+                        break;
+                    case UNRESPONSIVE:
+                        webServerStatus.setError(String.format(WEBBER_STATUS_UNRESPONSIVE_MESSAGE, health.getReason()));
+                        webServerStatus.show();
+                        webServerHealthShown = true;
+                        break;
+                    default:
+                        if(webServerHealthShown) {
+                            webServerStatus.setStatus(WEBBER_STATUS_STARTED_MESSAGE);
+                            webServerStatus.hide();
+                            webServerHealthShown = false;
+                        }
+                        break;
+                }
+            }
+        });
+        
         webServer.setOnError(new EventHandler<WebServerEvent<String>>() {
             @Override
             public void handle(WebServerEvent<String> t) {
+                webServerHealthShown = false;
+                webServerErrorShown = true;
                 webServerStatus.setError(t.getData());
                 webServerStatus.show();
             }
@@ -210,6 +270,15 @@ public class Webber extends Application {
         } catch( InterruptedException e ) {
             // continue without waiting
         }
+        
+        if(mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch(JMException e) {
+                logger.log(Level.WARNING, "Webber MBean could not be unregistered", e);
+            }
+            mbeanName = null;
+        }
     }
     
     public class Parameters extends Application.Parameters {
@@ -249,6 +318,29 @@ public class Webber extends Application {
     }
     
     
+    /**
+     * WebberMonitor implements the JMX interface to the runtime
+     * metrics of this application.
+     */
+    private class WebberMonitor implements WebberMXBean {
+        
+        @Override
+        public String getTitle() {
+            return title;
+        }
+        
+        @Override
+        public long getUptime() {
+            return System.currentTimeMillis() - startTime;
+        }
+        
+        @Override
+        public int getWebClientCount() {
+            return webClientCount;
+        }
+    }
+    
+    
     public class WebServerStatus extends Stage {
         
         private Text statusText;
@@ -274,6 +366,11 @@ public class Webber extends Application {
             statusText.setFill(Color.BLACK);
         }
         
+        public void setWarning(String msg) {
+            statusText.setText(msg);
+            statusText.setFill(Color.DARKORANGE);
+        }
+        
         public void setError(String msg) {
             statusText.setText(msg);
             statusText.setFill(Color.RED);
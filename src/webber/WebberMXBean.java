@@ -0,0 +1,24 @@
+/*
+ */
+package webber;
+
+/**
+ * WebberMXBean exposes the runtime metrics of the
+ * {@link webber.Webber Webber} application for monitoring with JMX.
+ * 
+ * @author maxwelld
+ */
+public interface WebberMXBean {
+    
+    String getTitle();
+    
+    /**
+     * @return the time in milliseconds since the application started
+     */
+    long getUptime();
+    
+    /**
+     * @return the number of web client windows opened
+     */
+    int getWebClientCount();
+}
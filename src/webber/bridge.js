@@ -0,0 +1,150 @@
+/*
+ * Page side of the Webber bridge, injected by webber.WebBridge once a page
+ * has loaded. Messages are framed as <type><length>:<channel><length>:<data>
+ * and batched into a single payload which is passed across the bridge once
+ * per animation frame. Bulk data is sent as base64.
+ *
+ * The bridge is injected after the page's own scripts have run, so a
+ * 'webberready' event is dispatched on the window once it is available.
+ */
+(function (window) {
+
+    var java = window.webberBridge;
+
+    var maxPending = java.getMaxPending();
+
+    var outbound = [];
+
+    var scheduled = false;
+
+    var listeners = {};
+
+    var requestFrame = window.requestAnimationFrame || function (callback) {
+        return window.setTimeout(callback, 16);
+    };
+
+    function frame(type, channel, data) {
+        return type + channel.length + ':' + channel + data.length + ':' + data;
+    }
+
+    function schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            requestFrame(flush);
+        }
+    }
+
+    function flush() {
+        scheduled = false;
+        if (outbound.length === 0) {
+            return;
+        }
+        var payload = outbound.join('');
+        outbound = [];
+        java.receive(payload);
+    }
+
+    function queue(type, channel, data) {
+        if (outbound.length >= maxPending) {
+            return false;
+        }
+        outbound.push(frame(type, String(channel), data));
+        schedule();
+        return true;
+    }
+
+    function encode(array) {
+        var bytes = (array instanceof ArrayBuffer) ? new Uint8Array(array)
+                : new Uint8Array(array.buffer, array.byteOffset, array.byteLength);
+        var chunks = [];
+        for (var idx = 0; idx < bytes.length; idx += 0x8000) {
+            chunks.push(String.fromCharCode.apply(null, bytes.subarray(idx, idx + 0x8000)));
+        }
+        return window.btoa(chunks.join(''));
+    }
+
+    function decode(data) {
+        var binary = window.atob(data);
+        var bytes = new Uint8Array(binary.length);
+        for (var idx = 0; idx < binary.length; idx++) {
+            bytes[idx] = binary.charCodeAt(idx);
+        }
+        return bytes;
+    }
+
+    function dispatch(channel, data) {
+        var list = listeners[channel];
+        if (!list) {
+            return;
+        }
+        for (var idx = 0; idx < list.length; idx++) {
+            try {
+                list[idx](data, channel);
+            } catch (e) {
+                window.console && window.console.error(e);
+            }
+        }
+    }
+
+    function readLength(payload, start) {
+        var end = payload.indexOf(':', start);
+        return [parseInt(payload.substring(start, end), 10), end + 1];
+    }
+
+    window.webber = {
+
+        /**
+         * Send a string message to the application. Returns false, and
+         * drops the message, if too many messages are already pending.
+         */
+        post: function (channel, message) {
+            return queue('m', channel, String(message));
+        },
+
+        /**
+         * Send an ArrayBuffer or typed array to the application.
+         */
+        postBulk: function (channel, array) {
+            return queue('b', channel, encode(array));
+        },
+
+        /**
+         * Returns true if a message can be sent without being dropped.
+         */
+        writable: function () {
+            return outbound.length < maxPending;
+        },
+
+        on: function (channel, listener) {
+            (listeners[channel] = listeners[channel] || []).push(listener);
+        },
+
+        off: function (channel, listener) {
+            var list = listeners[channel];
+            if (list) {
+                var idx = list.indexOf(listener);
+                if (idx >= 0) {
+                    list.splice(idx, 1);
+                }
+            }
+        },
+
+        _deliver: function (payload) {
+            var pos = 0;
+            while (pos < payload.length) {
+                var type = payload.charAt(pos);
+                var length = readLength(payload, pos + 1);
+                var channel = payload.substr(length[1], length[0]);
+                length = readLength(payload, length[1] + length[0]);
+                var data = payload.substr(length[1], length[0]);
+                pos = length[1] + length[0];
+                dispatch(channel, (type === 'b') ? decode(data) : data);
+            }
+        }
+    };
+
+    var ready = window.document.createEvent('Event');
+    ready.initEvent('webberready', false, false);
+    window.dispatchEvent(ready);
+
+})(window);